@@ -0,0 +1,68 @@
+package ar.edu.itba.ss.cim;
+
+import java.util.Arrays;
+
+class CellHeadTable {
+    private static final long FREE_KEY = Long.MIN_VALUE;
+
+    // Open addressing with linear probing, so memory grows with the occupied cells instead of M^2
+    private long[] keys;
+    private int[] heads;
+    private int size;
+
+    CellHeadTable(int expectedCells) {
+        final int capacity = Integer.highestOneBit(Math.max(expectedCells, 8) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.heads = new int[capacity];
+        this.size = 0;
+        Arrays.fill(this.keys, FREE_KEY);
+    }
+
+    private static int slotFor(long cell, int mask) {
+        final long hash = cell * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int findSlot(long[] keys, long cell) {
+        final int mask = keys.length - 1;
+        int slot = slotFor(cell, mask);
+        while (keys[slot] != FREE_KEY && keys[slot] != cell) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int[] oldHeads = heads;
+        keys = new long[oldKeys.length * 2];
+        heads = new int[oldHeads.length * 2];
+        Arrays.fill(keys, FREE_KEY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                final int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+    }
+
+    public int get(long cell) {
+        final int slot = findSlot(keys, cell);
+        return keys[slot] == FREE_KEY ? CellMatrix.EMPTY : heads[slot];
+    }
+
+    public void put(long cell, int head) {
+        int slot = findSlot(keys, cell);
+        if (keys[slot] == FREE_KEY) {
+            // Keep the load factor at or below one half
+            if (2 * (size + 1) > keys.length) {
+                grow();
+                slot = findSlot(keys, cell);
+            }
+            keys[slot] = cell;
+            size++;
+        }
+        heads[slot] = head;
+    }
+}
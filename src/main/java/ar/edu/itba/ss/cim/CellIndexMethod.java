@@ -1,9 +1,14 @@
 package ar.edu.itba.ss.cim;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 public class CellIndexMethod<T extends Particle> {
+    // A particle may overlap its own cell plus the eight cells around it
+    private static final int MAX_CELLS_PER_PARTICLE = 9;
+    private static final long NO_CELL = Long.MIN_VALUE;
+
     final private double interactionRadius;
     final private Integer matrixCellCount;
     final private boolean periodicConditions;
@@ -59,15 +64,19 @@ public class CellIndexMethod<T extends Particle> {
 
     public Map<T, Set<T>> execute() {
         final double cellSize = 1.0 * plane.getLength() / matrixCellCount;
-        final HashMap<Integer, HashSet<T>> matrix = new HashMap<>();
-        final HashMap<T, HashSet<Integer>> cellsForParticle = new HashMap<>();
-
-        // Fill the matrix with the particles that are inside each cell
-        for (T particle : plane.getParticles()) {
+        final long cellCount = (long) matrixCellCount * matrixCellCount;
+        final List<T> particles = plane.getParticles();
+        final long[][] cellsForParticle = new long[particles.size()][];
+        final long[] particleCells = new long[MAX_CELLS_PER_PARTICLE];
+
+        // Find the cells each particle is inside of
+        int entryCount = 0;
+        for (int index = 0; index < particles.size(); index++) {
+            final T particle = particles.get(index);
             final int i = (int) Math.floor((plane.getLength() - particle.getY()) / cellSize);
             final int j = (int) Math.floor(particle.getX() / cellSize);
 
-            final int cellNumber = i * matrixCellCount + (j + 1);
+            final long cellNumber = (long) i * matrixCellCount + (j + 1);
             final double cellTopLeftX = j * cellSize;
             final double cellTopLeftY = plane.getLength() - i * cellSize;
             final double cellBottomRightX = (j + 1) * cellSize;
@@ -78,89 +87,79 @@ public class CellIndexMethod<T extends Particle> {
             final boolean insideTopCell = isInsideCell(particle, cellTopLeftX, cellTopLeftY + cellSize, cellBottomRightX, cellBottomRightY + cellSize);
             final boolean insideBottomCell = isInsideCell(particle, cellTopLeftX, cellTopLeftY - cellSize, cellBottomRightX, cellBottomRightY - cellSize);
 
-            matrix.putIfAbsent(cellNumber, new HashSet<>());
-            cellsForParticle.putIfAbsent(particle, new HashSet<>());
-            matrix.get(cellNumber).add(particle);
-            cellsForParticle.get(particle).add(cellNumber);
+            int particleCellCount = 0;
+            particleCells[particleCellCount++] = cellNumber;
             if (insideLeftCell) {
-                matrix.putIfAbsent(cellNumber - 1, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber - 1).add(particle);
-                cellsForParticle.get(particle).add(cellNumber - 1);
+                particleCells[particleCellCount++] = cellNumber - 1;
             }
             if (insideRightCell) {
-                matrix.putIfAbsent(cellNumber + 1, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber + 1).add(particle);
-                cellsForParticle.get(particle).add(cellNumber + 1);
+                particleCells[particleCellCount++] = cellNumber + 1;
             }
             if (insideTopCell) {
-                matrix.putIfAbsent(cellNumber - matrixCellCount, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber - matrixCellCount).add(particle);
-                cellsForParticle.get(particle).add(cellNumber - matrixCellCount);
+                particleCells[particleCellCount++] = cellNumber - matrixCellCount;
             }
             if (insideBottomCell) {
-                matrix.putIfAbsent(cellNumber + matrixCellCount, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber + matrixCellCount).add(particle);
-                cellsForParticle.get(particle).add(cellNumber + matrixCellCount);
+                particleCells[particleCellCount++] = cellNumber + matrixCellCount;
             }
             if (insideLeftCell && insideTopCell) {
-                matrix.putIfAbsent(cellNumber - matrixCellCount - 1, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber - matrixCellCount - 1).add(particle);
-                cellsForParticle.get(particle).add(cellNumber - matrixCellCount - 1);
+                particleCells[particleCellCount++] = cellNumber - matrixCellCount - 1;
             }
             if (insideRightCell && insideTopCell) {
-                matrix.putIfAbsent(cellNumber - matrixCellCount + 1, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber - matrixCellCount + 1).add(particle);
-                cellsForParticle.get(particle).add(cellNumber - matrixCellCount + 1);
+                particleCells[particleCellCount++] = cellNumber - matrixCellCount + 1;
             }
             if (insideLeftCell && insideBottomCell) {
-                matrix.putIfAbsent(cellNumber + matrixCellCount - 1, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber + matrixCellCount - 1).add(particle);
-                cellsForParticle.get(particle).add(cellNumber + matrixCellCount - 1);
+                particleCells[particleCellCount++] = cellNumber + matrixCellCount - 1;
             }
             if (insideRightCell && insideBottomCell) {
-                matrix.putIfAbsent(cellNumber + matrixCellCount + 1, new HashSet<>());
-                cellsForParticle.putIfAbsent(particle, new HashSet<>());
-                matrix.get(cellNumber + matrixCellCount + 1).add(particle);
-                cellsForParticle.get(particle).add(cellNumber + matrixCellCount + 1);
+                particleCells[particleCellCount++] = cellNumber + matrixCellCount + 1;
+            }
+            cellsForParticle[index] = Arrays.copyOf(particleCells, particleCellCount);
+            entryCount += particleCellCount;
+        }
+
+        // Fill the matrix with the particles that are inside each cell
+        final CellMatrix matrix = CellMatrix.forDimensions(matrixCellCount, entryCount);
+        for (int index = 0; index < particles.size(); index++) {
+            for (long cell : cellsForParticle[index]) {
+                matrix.add(cell, index);
             }
         }
 
         // Create neighbours list
         final Map<T, Set<T>> neighbours = new HashMap<>();
-        for (T particle : plane.getParticles()) {
+        for (T particle : particles) {
             neighbours.put(particle, new HashSet<>());
         }
 
         // Fill the neighbours list
-        for (T particle : plane.getParticles()) {
-            final HashSet<Integer> cells = cellsForParticle.get(particle);
-            for (Integer cell : cells) {
-                Optional.ofNullable(matrix.get(cell)).ifPresent(set -> neighbours.get(particle).addAll(set));
-                Integer topCell = null;
-                Integer topRightCell = null;
-                Integer rightCell = null;
-                Integer bottomRightCell = null;
+        for (int index = 0; index < particles.size(); index++) {
+            final T particle = particles.get(index);
+            final Set<T> particleNeighbours = neighbours.get(particle);
+            final IntConsumer addNeighbour = other -> particleNeighbours.add(particles.get(other));
+            final IntConsumer addMutualNeighbour = other -> {
+                particleNeighbours.add(particles.get(other));
+                neighbours.get(particles.get(other)).add(particle);
+            };
+            for (long cell : cellsForParticle[index]) {
+                matrix.forEach(cell, addNeighbour);
+                long topCell = NO_CELL;
+                long topRightCell = NO_CELL;
+                long rightCell = NO_CELL;
+                long bottomRightCell = NO_CELL;
                 if (periodicConditions) {
                     if (cell % matrixCellCount == 0) {
-                        topCell = Math.floorMod(cell - matrixCellCount, matrixCellCount * matrixCellCount);
+                        topCell = Math.floorMod(cell - matrixCellCount, cellCount);
                         if (topCell == 0) {
-                            topCell = matrixCellCount * matrixCellCount;
+                            topCell = cellCount;
                         }
-                        topRightCell = Math.floorMod(cell - 2 * matrixCellCount + 1, matrixCellCount * matrixCellCount);
-                        rightCell = Math.floorMod(cell + 1 - matrixCellCount, matrixCellCount * matrixCellCount);
-                        bottomRightCell = Math.floorMod(cell + 1, matrixCellCount * matrixCellCount);
+                        topRightCell = Math.floorMod(cell - 2L * matrixCellCount + 1, cellCount);
+                        rightCell = Math.floorMod(cell + 1 - matrixCellCount, cellCount);
+                        bottomRightCell = Math.floorMod(cell + 1, cellCount);
                     } else {
-                        topCell = Math.floorMod(cell - matrixCellCount, matrixCellCount * matrixCellCount);
-                        topRightCell = Math.floorMod(cell - matrixCellCount + 1, matrixCellCount * matrixCellCount);
-                        rightCell = Math.floorMod(cell + 1, matrixCellCount * matrixCellCount);;
-                        bottomRightCell = Math.floorMod(cell + matrixCellCount + 1, matrixCellCount * matrixCellCount);
+                        topCell = Math.floorMod(cell - matrixCellCount, cellCount);
+                        topRightCell = Math.floorMod(cell - matrixCellCount + 1, cellCount);
+                        rightCell = Math.floorMod(cell + 1, cellCount);
+                        bottomRightCell = Math.floorMod(cell + matrixCellCount + 1, cellCount);
                     }
                 } else {
                     if (cell < matrixCellCount) {
@@ -168,7 +167,7 @@ public class CellIndexMethod<T extends Particle> {
                         bottomRightCell = cell + matrixCellCount + 1;
                     } else if (cell % matrixCellCount == 0 &&  cell > matrixCellCount) {
                         topCell = cell - matrixCellCount;
-                    } else if (cell > matrixCellCount * (matrixCellCount - 1) && cell % matrixCellCount != 0) {
+                    } else if (cell > cellCount - matrixCellCount && cell % matrixCellCount != 0) {
                         topCell = cell - matrixCellCount;
                         topRightCell = cell - matrixCellCount + 1;
                         rightCell = cell + 1;
@@ -179,34 +178,22 @@ public class CellIndexMethod<T extends Particle> {
                         bottomRightCell = cell + matrixCellCount + 1;
                     }
                 }
-                if (topCell != null) {
-                    Optional.ofNullable(matrix.get(topCell)).ifPresent(set -> {
-                        neighbours.get(particle).addAll(set);
-                        set.forEach(p -> neighbours.get(p).add(particle));
-                    });
+                if (topCell != NO_CELL) {
+                    matrix.forEach(topCell, addMutualNeighbour);
                 }
-                if (topRightCell != null) {
-                    Optional.ofNullable(matrix.get(topRightCell)).ifPresent(set -> {
-                        neighbours.get(particle).addAll(set);
-                        set.forEach(p -> neighbours.get(p).add(particle));
-                    });
+                if (topRightCell != NO_CELL) {
+                    matrix.forEach(topRightCell, addMutualNeighbour);
                 }
-                if (rightCell != null) {
-                    Optional.ofNullable(matrix.get(rightCell)).ifPresent(set -> {
-                        neighbours.get(particle).addAll(set);
-                        set.forEach(p -> neighbours.get(p).add(particle));
-                    });
+                if (rightCell != NO_CELL) {
+                    matrix.forEach(rightCell, addMutualNeighbour);
                 }
-                if (bottomRightCell != null) {
-                    Optional.ofNullable(matrix.get(bottomRightCell)).ifPresent(set -> {
-                        neighbours.get(particle).addAll(set);
-                        set.forEach(p -> neighbours.get(p).add(particle));
-                    });
+                if (bottomRightCell != NO_CELL) {
+                    matrix.forEach(bottomRightCell, addMutualNeighbour);
                 }
             }
         }
 
-        for (T particle : getPlane().getParticles()) {
+        for (T particle : particles) {
             Set<T> newNeighboursForParticle = neighbours.get(particle).stream()
                     .filter(
                                 p -> !p.equals(particle) &&
@@ -0,0 +1,54 @@
+package ar.edu.itba.ss.cim;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+abstract class CellMatrix {
+    private static final int DENSE_MIN_CELLS = 1 << 16;
+    private static final int DENSE_CELLS_PER_ENTRY = 16;
+    private static final int DENSE_MAX_CELLS = 1 << 26;
+    protected static final int EMPTY = -1;
+
+    // Every cell holds a linked list of entries, each entry pointing to a particle index
+    private int[] entryParticle;
+    private int[] entryNext;
+    private int entryCount;
+
+    protected CellMatrix(int expectedEntries) {
+        final int capacity = Math.max(expectedEntries, 16);
+        this.entryParticle = new int[capacity];
+        this.entryNext = new int[capacity];
+        this.entryCount = 0;
+    }
+
+    static CellMatrix forDimensions(int matrixCellCount, int entryCount) {
+        final long cellCount = (long) matrixCellCount * matrixCellCount;
+        // A flat array of heads only pays off while M^2 stays close to the amount of (particle, cell) entries
+        final long denseLimit = Math.min(DENSE_MAX_CELLS, Math.max(DENSE_MIN_CELLS, (long) DENSE_CELLS_PER_ENTRY * entryCount));
+        if (cellCount <= denseLimit) {
+            return new DenseCellMatrix(matrixCellCount, entryCount);
+        }
+        return new SparseCellMatrix(entryCount);
+    }
+
+    protected abstract int getHead(long cell);
+
+    protected abstract void setHead(long cell, int entry);
+
+    public void add(long cell, int particleIndex) {
+        if (entryCount == entryParticle.length) {
+            entryParticle = Arrays.copyOf(entryParticle, entryCount * 2);
+            entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+        }
+        entryParticle[entryCount] = particleIndex;
+        entryNext[entryCount] = getHead(cell);
+        setHead(cell, entryCount);
+        entryCount++;
+    }
+
+    public void forEach(long cell, IntConsumer action) {
+        for (int entry = getHead(cell); entry != EMPTY; entry = entryNext[entry]) {
+            action.accept(entryParticle[entry]);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ar.edu.itba.ss.cim;
+
+import java.util.Arrays;
+
+class DenseCellMatrix extends CellMatrix {
+    private static final int OUTSIDE_EXPECTED_CELLS = 16;
+
+    private final int[] heads;
+    // Cells outside 0..M^2 (border particles, or particles moved off the plane after it was built)
+    private CellHeadTable outsideHeads;
+
+    DenseCellMatrix(int matrixCellCount, int entryCount) {
+        super(entryCount);
+        // Cells are numbered from 1 to M^2, index 0 is kept so periodic wrap-arounds can land on it
+        this.heads = new int[matrixCellCount * matrixCellCount + 1];
+        Arrays.fill(this.heads, EMPTY);
+    }
+
+    private boolean isInside(long cell) {
+        return cell >= 0 && cell < heads.length;
+    }
+
+    @Override
+    protected int getHead(long cell) {
+        if (isInside(cell)) {
+            return heads[(int) cell];
+        }
+        return outsideHeads == null ? EMPTY : outsideHeads.get(cell);
+    }
+
+    @Override
+    protected void setHead(long cell, int entry) {
+        if (isInside(cell)) {
+            heads[(int) cell] = entry;
+            return;
+        }
+        if (outsideHeads == null) {
+            outsideHeads = new CellHeadTable(OUTSIDE_EXPECTED_CELLS);
+        }
+        outsideHeads.put(cell, entry);
+    }
+}
@@ -0,0 +1,21 @@
+package ar.edu.itba.ss.cim;
+
+class SparseCellMatrix extends CellMatrix {
+    private final CellHeadTable heads;
+
+    SparseCellMatrix(int entryCount) {
+        super(entryCount);
+        // There can never be more occupied cells than entries
+        this.heads = new CellHeadTable(entryCount);
+    }
+
+    @Override
+    protected int getHead(long cell) {
+        return heads.get(cell);
+    }
+
+    @Override
+    protected void setHead(long cell, int entry) {
+        heads.put(cell, entry);
+    }
+}